@@ -38,6 +38,13 @@ public class Lucie_Norbert_Batch implements PlugIn{
 	int enlargeWalls=(int) Prefs.get("Lucie_Norbert_Batch_enlargeWalls.double", 2);
 	int enlargePDs= (int) Prefs.get("Lucie_Norbert_Batch_enlargeWalls.doublle", 1);
 	
+	boolean spatialMetrics=Prefs.getBoolean("Lucie_Norbert_Batch_spatialMetrics.boolean", false);
+	
+	boolean detectPDs=Prefs.getBoolean("Lucie_Norbert_Batch_detectPDs.boolean", false);
+	double radiusPDs=Prefs.get("Lucie_Norbert_Batch_radiusPDs.double", 1.5);
+	double prominencePDs=Prefs.get("Lucie_Norbert_Batch_prominencePDs.double", 10.0);
+	boolean savePDsMask=Prefs.getBoolean("Lucie_Norbert_Batch_savePDsMask.boolean", false);
+	
 	String[] luts=IJ.getLuts();
 	String lut=Prefs.get("Lucie_Norbert_Batch_LUT.String", luts[0]);
 
@@ -61,6 +68,11 @@ public class Lucie_Norbert_Batch implements PlugIn{
 		gd.addChoice("Which channel corresponds to PDs ?", new String[]{"1", "2"}, PDsChannel);
 		gd.addNumericField("Enlarge walls to count PDs (pixels)", enlargeWalls);
 		gd.addNumericField("Enlarge PDs to quantify signal (pixels)", enlargePDs);
+		gd.addCheckbox("Compute PDs spatial distribution metrics", spatialMetrics);
+		gd.addCheckbox("Detect PDs from original images (PD detection folder not required)", detectPDs);
+		gd.addNumericField("PDs detection: radius (pixels)", radiusPDs);
+		gd.addNumericField("PDs detection: prominence above background (grey levels)", prominencePDs);
+		gd.addCheckbox("PDs detection: save detection masks", savePDsMask);
 		gd.addChoice("LUT for colormaps", luts, lut);
 		gd.showDialog();
 		
@@ -71,8 +83,18 @@ public class Lucie_Norbert_Batch implements PlugIn{
 		PDsChannel=gd.getNextChoice();
 		enlargeWalls=(int) gd.getNextNumber();
 		enlargePDs=(int) gd.getNextNumber();
+		spatialMetrics=gd.getNextBoolean();
+		detectPDs=gd.getNextBoolean();
+		radiusPDs=gd.getNextNumber();
+		prominencePDs=gd.getNextNumber();
+		savePDsMask=gd.getNextBoolean();
 		lut=gd.getNextChoice();
 		
+		if(detectPDs && radiusPDs<=0) {
+			IJ.error("The PDs radius should be strictly positive");
+			return false;
+		}
+		
 		if(PDsChannel=="2") wallsChannel="1";
 		
 		input=input.endsWith(File.separator)?input:input+File.separator;
@@ -83,24 +105,30 @@ public class Lucie_Norbert_Batch implements PlugIn{
 		Prefs.set("Lucie_Norbert_Batch_PDsChannel.String", PDsChannel);
 		Prefs.set("Lucie_Norbert_Batch_enlargeWalls.double", enlargeWalls);
 		Prefs.set("Lucie_Norbert_Batch_enlargeWalls.double", enlargePDs);
+		Prefs.set("Lucie_Norbert_Batch_spatialMetrics.boolean", spatialMetrics);
+		Prefs.set("Lucie_Norbert_Batch_detectPDs.boolean", detectPDs);
+		Prefs.set("Lucie_Norbert_Batch_radiusPDs.double", radiusPDs);
+		Prefs.set("Lucie_Norbert_Batch_prominencePDs.double", prominencePDs);
+		Prefs.set("Lucie_Norbert_Batch_savePDsMask.boolean", savePDsMask);
 		Prefs.set("Lucie_Norbert_Batch_LUT.String", lut);
 		
 		return true;
 	}
 	
 	/**
-	 * Batch processes all the files, based on the ones found in the PDs segmentation folder
+	 * Batch processes all the files, based on the ones found in the PDs segmentation folder, or on the original PDs images
+	 * when PDs are detected in-process
 	 */
 	public void process() {
 		String cellSegFolder=input+"Cell segmentation"+File.separator;
 		String oriImgFolder=input+"Original images"+File.separator;
 		String PDsSegFolder=input+"PD detection"+File.separator;
 		
-		if(new File(cellSegFolder).exists() && new File(oriImgFolder).exists() && new File(PDsSegFolder).exists()) {
-			String[] filesList=new File(PDsSegFolder).list(new FilenameFilter() {
+		if(new File(cellSegFolder).exists() && new File(oriImgFolder).exists() && (detectPDs || new File(PDsSegFolder).exists())) {
+			String[] filesList=new File(detectPDs?oriImgFolder:PDsSegFolder).list(new FilenameFilter() {
 				@Override
 				public boolean accept(File dir, String name) {
-					return name.toLowerCase().endsWith(".tif");
+					return name.toLowerCase().endsWith(".tif") && (!detectPDs || name.startsWith("C"+PDsChannel+"-"));
 				}
 			});
 			
@@ -112,13 +140,17 @@ public class Lucie_Norbert_Batch implements PlugIn{
 				String imgCellsOri=oriImgFolder+"C"+wallsChannel+"-"+basename+".tif";
 				String imgPDsOri=oriImgFolder+"C"+PDsChannel+"-"+basename+".tif";
 				String imgScaled=cellSegFolder+"C"+wallsChannel+"-"+basename+".png";
-				String imgPDsSeg=PDsSegFolder+"C"+PDsChannel+"-"+basename+".tif";
+				String imgPDsSeg=detectPDs?null:PDsSegFolder+"C"+PDsChannel+"-"+basename+".tif";
 				String pathRM=cellSegFolder+"C"+wallsChannel+"-"+basename+".zip";
 				
 				
 				boolean allFound=wpa.setPaths(imgCellsOri, imgPDsOri, imgScaled, imgPDsSeg, pathRM);
 				if(allFound) {
-					wpa.process(enlargeWalls, enlargePDs);
+					if(detectPDs) {
+						wpa.detectPDs(radiusPDs, prominencePDs);
+						if(savePDsMask) wpa.savePDsMask(output, basename);
+					}
+					wpa.process(enlargeWalls, enlargePDs, spatialMetrics);
 					wpa.save(output, basename, lut);
 				}else{
 					IJ.log("Missing at least one file for basename "+basename+"\n------------");
@@ -40,6 +40,13 @@ public class Lucie_Norbert_Single implements PlugIn{
 	int enlargeWalls=(int) Prefs.get("Lucie_Norbert_Batch_enlargeWalls.double", 2);
 	int enlargePDs= (int) Prefs.get("Lucie_Norbert_Batch_enlargeWalls.double", 1);
 	
+	boolean spatialMetrics=Prefs.getBoolean("Lucie_Norbert_Batch_spatialMetrics.boolean", false);
+	
+	boolean detectPDs=Prefs.getBoolean("Lucie_Norbert_Batch_detectPDs.boolean", false);
+	double radiusPDs=Prefs.get("Lucie_Norbert_Batch_radiusPDs.double", 1.5);
+	double prominencePDs=Prefs.get("Lucie_Norbert_Batch_prominencePDs.double", 10.0);
+	boolean savePDsMask=Prefs.getBoolean("Lucie_Norbert_Batch_savePDsMask.boolean", false);
+	
 	String[] luts=IJ.getLuts();
 	String lut=Prefs.get("Lucie_Norbert_Batch_LUT", luts[0]);
 
@@ -47,8 +54,8 @@ public class Lucie_Norbert_Single implements PlugIn{
 	public void run(String arg) {
 		//Checks
 		boolean checksOk=true;
-		if(WindowManager.getImageCount()<4) {
-			IJ.error("At least 4 images should be opened:\n-Original walls\n-Original PDs\n-Segmented walls\n-Segmented PDs");
+		if(WindowManager.getImageCount()<3) {
+			IJ.error("At least 3 images should be opened:\n-Original walls\n-Original PDs\n-Segmented walls\n-Segmented PDs (unless detected by the plugin)");
 			checksOk=false;
 		}
 		
@@ -82,10 +89,15 @@ public class Lucie_Norbert_Single implements PlugIn{
 		gd.addChoice("Original walls image", images, images[0]);
 		gd.addChoice("Original PDs image", images, images[1]);
 		gd.addChoice("Segmented walls image", images, images[2]);
-		gd.addChoice("Segmented PDs image", images, images[2]);
+		gd.addChoice("Segmented PDs image", images, images[images.length>3?3:2]);
 		gd.addDirectoryField("Where to save output ?", "");
 		gd.addNumericField("Enlarge walls to count PDs (pixels)", enlargeWalls);
 		gd.addNumericField("Enlarge PDs to quantify signal (pixels)", enlargePDs);
+		gd.addCheckbox("Compute PDs spatial distribution metrics", spatialMetrics);
+		gd.addCheckbox("Detect PDs from original PDs image (ignores segmented PDs image)", detectPDs);
+		gd.addNumericField("PDs detection: radius (pixels)", radiusPDs);
+		gd.addNumericField("PDs detection: prominence above background (grey levels)", prominencePDs);
+		gd.addCheckbox("PDs detection: save detection mask", savePDsMask);
 		gd.addChoice("LUT for colormaps", luts, lut);
 		gd.showDialog();
 		
@@ -98,13 +110,34 @@ public class Lucie_Norbert_Single implements PlugIn{
 		output=gd.getNextString();
 		enlargeWalls=(int) gd.getNextNumber();
 		enlargePDs=(int) gd.getNextNumber();
+		spatialMetrics=gd.getNextBoolean();
+		detectPDs=gd.getNextBoolean();
+		radiusPDs=gd.getNextNumber();
+		prominencePDs=gd.getNextNumber();
+		savePDsMask=gd.getNextBoolean();
 		lut=gd.getNextChoice();
 		
+		if(detectPDs && radiusPDs<=0) {
+			IJ.error("The PDs radius should be strictly positive");
+			return false;
+		}
+		
+		//Without in-process detection, the segmented PDs image should be a distinct, fourth image
+		if(!detectPDs && (segPDs.equals(oriWalls) || segPDs.equals(oriPDs) || segPDs.equals(segWalls))) {
+			IJ.error("The segmented PDs image should differ from the other images:\nopen it or tick the PDs detection option");
+			return false;
+		}
+		
 		output=output.endsWith(File.separator)?output:output+File.separator;
 		
 		Prefs.set("Lucie_Norbert_Batch_Output.String", output);
 		Prefs.set("Lucie_Norbert_Batch_enlargeWalls.double", enlargeWalls);
 		Prefs.set("Lucie_Norbert_Batch_enlargeWalls.double", enlargePDs);
+		Prefs.set("Lucie_Norbert_Batch_spatialMetrics.boolean", spatialMetrics);
+		Prefs.set("Lucie_Norbert_Batch_detectPDs.boolean", detectPDs);
+		Prefs.set("Lucie_Norbert_Batch_radiusPDs.double", radiusPDs);
+		Prefs.set("Lucie_Norbert_Batch_prominencePDs.double", prominencePDs);
+		Prefs.set("Lucie_Norbert_Batch_savePDsMask.boolean", savePDsMask);
 		Prefs.set("Lucie_Norbert_Batch_LUT.String", lut);
 		
 		return true;
@@ -115,12 +148,18 @@ public class Lucie_Norbert_Single implements PlugIn{
 	 */
 	public void process() {
 		WallsPDsAnalysis wpa=new WallsPDsAnalysis();
-		wpa.setImages(oriWalls, oriPDs, segWalls, segPDs);
+		wpa.setImages(oriWalls, oriPDs, segWalls, detectPDs?null:segPDs);
 		
-		String basename=segPDs.substring(segPDs.indexOf("_")+1);
+		String basename=detectPDs?oriPDs:segPDs;
+		basename=basename.substring(basename.indexOf("_")+1);
 		basename=basename.substring(0, basename.lastIndexOf("."));
 		
-		wpa.process(enlargeWalls, enlargePDs);
+		if(detectPDs) {
+			wpa.detectPDs(radiusPDs, prominencePDs);
+			if(savePDsMask) wpa.savePDsMask(output, basename);
+		}
+		
+		wpa.process(enlargeWalls, enlargePDs, spatialMetrics);
 		wpa.save(output, basename, lut);
 	}
 
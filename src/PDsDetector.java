@@ -0,0 +1,126 @@
+import java.awt.Polygon;
+import java.util.stream.IntStream;
+
+import ij.Prefs;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * PDsDetector.java
+ *
+ * Created on 18 oct. 2026
+ * Fabrice P. Cordelieres, fabrice.cordelieres at gmail.com
+ *
+ * Copyright (C) 2026 Fabrice P. Cordelieres
+ *
+ * License:
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * This class is aimed at detecting PDs as single points, directly on the original PDs image.
+ * The image is filtered by a difference of Gaussians (spot-sized Gaussian minus a 3 times wider
+ * Gaussian, acting as local background). Local maxima of the filtered image are candidate PDs, kept
+ * when the original image stands at least "prominence" above the local background at their position.
+ */
+public class PDsDetector {
+	double sigma=1.0/Math.sqrt(2);
+	double prominence=10.0;
+
+	/**
+	 * Creates a new detector
+	 * @param radius expected PDs radius (in pixels), converted to the standard deviation of the spot-sized Gaussian (sigma=radius/sqrt(2))
+	 * @param prominence minimum height of a PD above its local background (in grey levels of the original image)
+	 * @throws IllegalArgumentException in case the radius is not strictly positive
+	 */
+	public PDsDetector(double radius, double prominence) {
+		if(radius<=0) throw new IllegalArgumentException("PDs radius should be strictly positive (found "+radius+")");
+		this.sigma=radius/Math.sqrt(2);
+		this.prominence=prominence;
+	}
+
+	/**
+	 * Detects the PDs on the input image. The maxima search is performed in parallel on bands of rows
+	 * @param ip the original PDs image
+	 * @return a Polygon containing one vertex per PD
+	 */
+	public Polygon detect(ImageProcessor ip) {
+		int width=ip.getWidth();
+		int height=ip.getHeight();
+
+		//Float images are duplicated as the conversion would otherwise return the original processor
+		FloatProcessor ori=ip instanceof FloatProcessor?(FloatProcessor) ip.duplicate():ip.convertToFloatProcessor();
+		FloatProcessor spot=(FloatProcessor) ori.duplicate();
+		FloatProcessor background=(FloatProcessor) ori.duplicate();
+		GaussianBlur gb=new GaussianBlur();
+		gb.blurGaussian(spot, sigma, sigma, 0.0002);
+		gb.blurGaussian(background, 3*sigma, 3*sigma, 0.0002);
+
+		float[] oriPixels=(float[]) ori.getPixels();
+		float[] dog=(float[]) spot.getPixels();
+		float[] bkgd=(float[]) background.getPixels();
+		for(int i=0; i<dog.length; i++) dog[i]-=bkgd[i];
+
+		//Each band of rows is processed independently, results being kept in order
+		int nBands=Math.min(height, Math.max(1, Prefs.getThreads()));
+		Polygon[] bands=new Polygon[nBands];
+		IntStream.range(0, nBands).parallel().forEach(b->bands[b]=findMaxima(dog, oriPixels, bkgd, width, height, b*height/nBands, (b+1)*height/nBands));
+
+		Polygon out=new Polygon();
+		for(Polygon band:bands) {
+			for(int i=0; i<band.npoints; i++) out.addPoint(band.xpoints[i], band.ypoints[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Finds the local maxima of the filtered image, within a band of rows, and only keeps those where the original
+	 * image stands at least "prominence" above the local background. In case of equal neighbours, only the last pixel
+	 * in scanning order is retained so that a plateau of two pixels gives a single PD
+	 * @param dog the filtered image's pixels
+	 * @param ori the original image's pixels
+	 * @param bkgd the local background's pixels
+	 * @param width the image's width
+	 * @param height the image's height
+	 * @param yStart first row of the band (included)
+	 * @param yEnd last row of the band (excluded)
+	 * @return a Polygon containing one vertex per maximum
+	 */
+	private Polygon findMaxima(float[] dog, float[] ori, float[] bkgd, int width, int height, int yStart, int yEnd) {
+		Polygon out=new Polygon();
+
+		for(int y=yStart; y<yEnd; y++) {
+			for(int x=0; x<width; x++) {
+				float v=dog[x+y*width];
+				if(v<=0 || ori[x+y*width]-bkgd[x+y*width]<prominence) continue;
+
+				boolean isMax=true;
+				for(int dy=-1; dy<=1 && isMax; dy++) {
+					for(int dx=-1; dx<=1 && isMax; dx++) {
+						int nx=x+dx;
+						int ny=y+dy;
+						if((dx==0 && dy==0) || nx<0 || ny<0 || nx>=width || ny>=height) continue;
+						float n=dog[nx+ny*width];
+						boolean isBefore=dy<0 || (dy==0 && dx<0);
+						isMax=isBefore?v>=n:v>n;
+					}
+				}
+				if(isMax) out.addPoint(x, y);
+			}
+		}
+
+		return out;
+	}
+}
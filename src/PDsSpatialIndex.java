@@ -0,0 +1,207 @@
+import java.awt.Polygon;
+import java.awt.Rectangle;
+
+/**
+ * PDsSpatialIndex.java
+ *
+ * Created on 18 oct. 2026
+ * Fabrice P. Cordelieres, fabrice.cordelieres at gmail.com
+ *
+ * Copyright (C) 2026 Fabrice P. Cordelieres
+ *
+ * License:
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * This class stores PDs detection points into a regular grid of square bins, allowing neighbours
+ * to be retrieved without scanning all pairs of points. Once built, the index is read-only and may be
+ * queried from several threads at once.
+ */
+public class PDsSpatialIndex {
+	int[] x=null;
+	int[] y=null;
+
+	double binSize=1;
+	int originX=0;
+	int originY=0;
+	int nBinsX=1;
+	int nBinsY=1;
+
+	/** Index of the first point of each bin in binContent (binStart[b] to binStart[b+1]-1) */
+	int[] binStart=null;
+	/** Indexes of the points, sorted per bin */
+	int[] binContent=null;
+
+	/**
+	 * Builds the index from a set of points
+	 * @param points the points to index
+	 * @param binSize size of the bins (in pixels)
+	 */
+	public PDsSpatialIndex(Polygon points, double binSize) {
+		int n=points.npoints;
+		x=new int[n];
+		y=new int[n];
+		System.arraycopy(points.xpoints, 0, x, 0, n);
+		System.arraycopy(points.ypoints, 0, y, 0, n);
+		this.binSize=Math.max(1, binSize);
+
+		if(n>0) {
+			Rectangle bounds=points.getBounds();
+			originX=bounds.x;
+			originY=bounds.y;
+			nBinsX=(int) (bounds.width/this.binSize)+1;
+			nBinsY=(int) (bounds.height/this.binSize)+1;
+		}
+
+		//Counting sort of the points per bin
+		binStart=new int[nBinsX*nBinsY+1];
+		binContent=new int[n];
+		int[] binOfPoint=new int[n];
+		for(int i=0; i<n; i++) {
+			binOfPoint[i]=binX(x[i])+binY(y[i])*nBinsX;
+			binStart[binOfPoint[i]+1]++;
+		}
+		for(int b=0; b<nBinsX*nBinsY; b++) binStart[b+1]+=binStart[b];
+		int[] fill=binStart.clone();
+		for(int i=0; i<n; i++) binContent[fill[binOfPoint[i]]++]=i;
+	}
+
+	/**
+	 * Returns the number of indexed points
+	 * @return the number of indexed points
+	 */
+	public int size() {
+		return x.length;
+	}
+
+	/**
+	 * Returns the indexes of all the points falling within the input rectangle
+	 * @param r the rectangle to look into
+	 * @return an array of points' indexes
+	 */
+	public int[] getPointsIn(Rectangle r) {
+		int minBinX=Math.max(0, binX(r.x));
+		int maxBinX=Math.min(nBinsX-1, binX(r.x+r.width-1));
+		int minBinY=Math.max(0, binY(r.y));
+		int maxBinY=Math.min(nBinsY-1, binY(r.y+r.height-1));
+
+		//First pass counts the matches, so that the output only spans the visited bins' content
+		int count=0;
+		for(int pass=0; pass<2; pass++) {
+			int[] out=pass==0?null:new int[count];
+			count=0;
+			for(int by=minBinY; by<=maxBinY; by++) {
+				for(int bx=minBinX; bx<=maxBinX; bx++) {
+					int b=bx+by*nBinsX;
+					for(int k=binStart[b]; k<binStart[b+1]; k++) {
+						int i=binContent[k];
+						if(r.contains(x[i], y[i])) {
+							if(out!=null) out[count]=i;
+							count++;
+						}
+					}
+				}
+			}
+			if(out!=null) return out;
+		}
+		return new int[0];
+	}
+
+	/**
+	 * Computes the distance (in pixels) between a point and its nearest neighbour, inspecting the bins
+	 * ring by ring around the point's bin and stopping as soon as no closer point can be found
+	 * @param i index of the point
+	 * @return the distance to the nearest neighbour, NaN if the index contains less than 2 points
+	 */
+	public double getNearestNeighbourDistance(int i) {
+		if(x.length<2) return Double.NaN;
+
+		int cx=binX(x[i]);
+		int cy=binY(y[i]);
+		double best2=Double.MAX_VALUE;
+		int maxRing=Math.max(nBinsX, nBinsY);
+
+		for(int ring=0; ring<=maxRing; ring++) {
+			for(int by=cy-ring; by<=cy+ring; by++) {
+				if(by<0 || by>=nBinsY) continue;
+				//Only the border of the ring is inspected: inner bins have already been done
+				int step=(by==cy-ring || by==cy+ring)?1:Math.max(1, 2*ring);
+				for(int bx=cx-ring; bx<=cx+ring; bx+=step) {
+					if(bx<0 || bx>=nBinsX) continue;
+					int b=bx+by*nBinsX;
+					for(int k=binStart[b]; k<binStart[b+1]; k++) {
+						int j=binContent[k];
+						if(j==i) continue;
+						double dx=x[j]-x[i];
+						double dy=y[j]-y[i];
+						best2=Math.min(best2, dx*dx+dy*dy);
+					}
+				}
+			}
+			//Any point beyond the current ring is at least ring*binSize away
+			if(best2<=(ring*binSize)*(ring*binSize)) break;
+		}
+
+		return Math.sqrt(best2);
+	}
+
+	/**
+	 * Counts the number of points (the point itself excluded) lying within a given distance of a point
+	 * @param i index of the point
+	 * @param radius the search radius (in pixels)
+	 * @return the number of neighbours found at a distance lower or equal to radius
+	 */
+	public int countNeighboursWithin(int i, double radius) {
+		int minBinX=Math.max(0, binX(x[i]-radius));
+		int maxBinX=Math.min(nBinsX-1, binX(x[i]+radius));
+		int minBinY=Math.max(0, binY(y[i]-radius));
+		int maxBinY=Math.min(nBinsY-1, binY(y[i]+radius));
+		double radius2=radius*radius;
+		int count=0;
+
+		for(int by=minBinY; by<=maxBinY; by++) {
+			for(int bx=minBinX; bx<=maxBinX; bx++) {
+				int b=bx+by*nBinsX;
+				for(int k=binStart[b]; k<binStart[b+1]; k++) {
+					int j=binContent[k];
+					if(j==i) continue;
+					double dx=x[j]-x[i];
+					double dy=y[j]-y[i];
+					if(dx*dx+dy*dy<=radius2) count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Converts an x coordinate to a bin column
+	 * @param xPos the x coordinate
+	 * @return the bin column (may lie outside the grid)
+	 */
+	private int binX(double xPos) {
+		return (int) Math.floor((xPos-originX)/binSize);
+	}
+
+	/**
+	 * Converts a y coordinate to a bin row
+	 * @param yPos the y coordinate
+	 * @return the bin row (may lie outside the grid)
+	 */
+	private int binY(double yPos) {
+		return (int) Math.floor((yPos-originY)/binSize);
+	}
+}
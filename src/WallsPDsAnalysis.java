@@ -1,6 +1,10 @@
+import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.stream.IntStream;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -13,8 +17,12 @@ import ij.measure.ResultsTable;
 import ij.plugin.HyperStackConverter;
 import ij.plugin.RoiEnlarger;
 import ij.plugin.RoiScaler;
+import ij.plugin.filter.EDM;
 import ij.plugin.filter.MaximumFinder;
 import ij.plugin.frame.RoiManager;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 
 /**
@@ -54,6 +62,17 @@ public class WallsPDsAnalysis {
 	int enlargeWalls=2;
 	int enlargePDs=2;
 	
+	/** Coordinates of all PDs, either read from the segmented PDs image or detected in-process */
+	Polygon PDsPoints=null;
+	/** Spatial index of all PDs detected on the image */
+	PDsSpatialIndex PDsIndex=null;
+	/** If true, PDs spatial distribution metrics are added to the results */
+	boolean spatialMetrics=false;
+	/** Radii (in pixels) at which Ripley's L function is evaluated: both radii and L values are reported in pixels */
+	int[] ripleyRadii={5, 10, 20};
+	/** Prefixes of the spatial metrics columns, for which no color map is generated */
+	String[] spatialMetricsColumns={"Mean_NN_Distance_PDs_", "Mean_Distance_PDs_to_Boundary_", "Ripley_L_PDs_"};
+	
 	ResultsTable resultsPerCell=null;
 	ResultsTable resultsStatsPerTagFromCells=null;
 	ResultsTable resultsPerTag=null;
@@ -65,7 +84,7 @@ public class WallsPDsAnalysis {
 	 * @param pathOriWalls path to the original walls image
 	 * @param pathOriPDs path to the original PDs image
 	 * @param pathScaledWalls path to the scaled PDs image
-	 * @param pathSegmentedPDs path to the segmented PDs image (should be a mask where PDs appear as single points)
+	 * @param pathSegmentedPDs path to the segmented PDs image (should be a mask where PDs appear as single points), null if PDs are to be detected using detectPDs
 	 * @param pathRoiManagerWalls path to the zip file containing all the cell segmentation ROIs
 	 * @return true in case all files were found, false otherwise
 	 */
@@ -80,12 +99,14 @@ public class WallsPDsAnalysis {
 		resultsStatsPerTagFromCells=null;
 		resultsPerTag=null;
 		categories=null;
+		PDsPoints=null;
+		PDsIndex=null;
 		
 		if(isFound) {
 			ipOriWalls=new ImagePlus(pathOriWalls);
 			ipOriPDs=new ImagePlus(pathOriPDs);
 			ipScaledWalls=new ImagePlus(pathScaledWalls);
-			ipSegmentedPDs=new ImagePlus(pathSegmentedPDs);
+			ipSegmentedPDs=pathSegmentedPDs!=null?new ImagePlus(pathSegmentedPDs):null;
 			unscaledRoiWalls=new RoiManager(true);
 			unscaledRoiWalls.open(pathRoiManagerWalls);
 			scaledRoiWalls=new RoiManager(true);
@@ -111,19 +132,21 @@ public class WallsPDsAnalysis {
 	 * @param nameOriWalls name of the original walls image
 	 * @param nameOriPDs name of the original PDs image
 	 * @param nameScaledWalls name of the scaled PDs image
-	 * @param nameSegmentedPDs name of the segmented PDs image (should be a mask where PDs appear as single points)
+	 * @param nameSegmentedPDs name of the segmented PDs image (should be a mask where PDs appear as single points), null if PDs are to be detected using detectPDs
 	 */
 	public void setImages(String nameOriWalls, String nameOriPDs,  String nameScaledWalls, String nameSegmentedPDs) {
 		ipOriWalls=WindowManager.getImage(nameOriWalls);
 		ipOriPDs=WindowManager.getImage(nameOriPDs);
 		ipScaledWalls=WindowManager.getImage(nameScaledWalls);
-		ipSegmentedPDs=WindowManager.getImage(nameSegmentedPDs);
+		ipSegmentedPDs=nameSegmentedPDs!=null?WindowManager.getImage(nameSegmentedPDs):null;
 		unscaledRoiWalls=RoiManager.getInstance();
 		scaledRoiWalls=new RoiManager(true);
 		resultsPerCell=null;
 		resultsStatsPerTagFromCells=null;
 		resultsPerTag=null;
 		categories=null;
+		PDsPoints=null;
+		PDsIndex=null;
 	}
 	
 	/**
@@ -131,19 +154,20 @@ public class WallsPDsAnalysis {
 	 * @param pathOriWalls path to the original walls image
 	 * @param pathOriPDs path to the original PDs image
 	 * @param pathScaledWalls path to the scaled PDs image
-	 * @param pathSegmentedPDs path to the segmented PDs image (should be a mask where PDs appear as single points)
+	 * @param pathSegmentedPDs path to the segmented PDs image (should be a mask where PDs appear as single points), null if not required
 	 * @param pathRoiManagerWalls path to the zip file containing all the cell segmentation ROIs
 	  @return true in case all files were found, false otherwise. Logs the paths to missing files.
 	 */
 	private boolean check(String pathOriWalls, String pathOriPDs,  String pathScaledWalls, String pathSegmentedPDs, String pathRoiManagerWalls) {
-		boolean isFound=new File(pathOriWalls).exists() && new File(pathOriPDs).exists() && new File(pathScaledWalls).exists() && new File(pathSegmentedPDs).exists() && new File(pathRoiManagerWalls).exists();
+		boolean isSegmentedPDsFound=pathSegmentedPDs==null || new File(pathSegmentedPDs).exists();
+		boolean isFound=new File(pathOriWalls).exists() && new File(pathOriPDs).exists() && new File(pathScaledWalls).exists() && isSegmentedPDsFound && new File(pathRoiManagerWalls).exists();
 		
 		//Informations to guide the user about what is missing and how missing files should be named
 		if(!isFound) IJ.log("------------\nMissing at least one file:");
 		if(!new File(pathOriWalls).exists()) IJ.log(pathOriWalls+" not found");
 		if(!new File(pathOriPDs).exists()) IJ.log(pathOriPDs+" not found");
 		if(!new File(pathScaledWalls).exists()) IJ.log(pathScaledWalls+" not found");
-		if(!new File(pathSegmentedPDs).exists()) IJ.log(pathSegmentedPDs+" not found");
+		if(!isSegmentedPDsFound) IJ.log(pathSegmentedPDs+" not found");
 		if(!new File(pathRoiManagerWalls).exists()) IJ.log(pathRoiManagerWalls+" not found");
 		
 		return isFound;
@@ -156,11 +180,31 @@ public class WallsPDsAnalysis {
 	 * @param enlargePDs enlargement (in pixels) to be performed on the PDs Rois to quantify the signal associated to PDs.
 	 */
 	public void process(int enlargeWalls, int enlargePDs) {
+		process(enlargeWalls, enlargePDs, false);
+	}
+	
+	/**
+	 * Depending on the scale difference between the OriWalls image and the ScaledWalls image, a new RoiManager object is created,
+	 * storing scaled Rois. Performs all analysis, per cell and per tag and feeds two ResultsTable object with measurements
+	 * @param enlargeWalls enlargement (in pixels) to be performed on the walls Rois to count PDs. Doesn't affect the cell area measurement
+	 * @param enlargePDs enlargement (in pixels) to be performed on the PDs Rois to quantify the signal associated to PDs.
+	 * @param spatialMetrics if true, PDs spatial distribution metrics (nearest neighbour, Ripley's L, distance to boundary) are added to the results
+	 */
+	public void process(int enlargeWalls, int enlargePDs, boolean spatialMetrics) {
+		this.spatialMetrics=spatialMetrics;
+		
 		for(Roi r:unscaledRoiWalls.getRoisAsArray()) scaledRoiWalls.addRoi(r);
 		
 		scaleRois((double) ipOriWalls.getWidth()/ipScaledWalls.getWidth());
 		scaledRoiWallsPerTag=fuseRoisPerTag("_", scaledRoiWalls, ipOriWalls);
 		
+		//PDs are only read from the segmented image when they have not been detected in-process
+		if(PDsPoints==null) PDsPoints=getPDsPoints(ipSegmentedPDs);
+		PDsIndex=new PDsSpatialIndex(PDsPoints, 32);
+		
+		//Logged once per image, the calibration being the one used by quantify
+		Calibration c=(ipSegmentedPDs!=null?ipSegmentedPDs:ipOriPDs).getCalibration();
+		if(spatialMetrics && c.pixelWidth!=c.pixelHeight) IJ.log("Pixels are not square: PDs spatial distribution metrics are expressed in pixels");
 		
 		//Quantify per cell
 		resultsPerCell=quantify(scaledRoiWalls.getRoisAsArray(), "_", enlargeWalls, enlargePDs);
@@ -169,6 +213,30 @@ public class WallsPDsAnalysis {
 		resultsPerTag=quantify(scaledRoiWallsPerTag.getRoisAsArray(), "_", enlargeWalls, enlargePDs);
 	}
 	
+	/**
+	 * Detects the PDs directly on the original PDs image, the segmented PDs image being no longer required.
+	 * Should be called before process
+	 * @param radius expected PDs radius (in pixels), should be strictly positive
+	 * @param prominence minimum height of a PD above its local background (in grey levels)
+	 */
+	public void detectPDs(double radius, double prominence) {
+		IJ.showStatus("Detecting PDs");
+		PDsPoints=new PDsDetector(radius, prominence).detect(ipOriPDs.getProcessor());
+	}
+	
+	/**
+	 * Saves the PDs as a mask where PDs appear as single points, for quality control purposes
+	 * @param pathOutput path to the output folder
+	 * @param basename basename to be used when saving the mask
+	 */
+	public void savePDsMask(String pathOutput, String basename) {
+		ImagePlus mask=NewImage.createByteImage(basename+"_PDsDetection", ipOriPDs.getWidth(), ipOriPDs.getHeight(), 1, NewImage.FILL_BLACK);
+		ImageProcessor iproc=mask.getProcessor();
+		for(int i=0; i<PDsPoints.npoints; i++) iproc.set(PDsPoints.xpoints[i], PDsPoints.ypoints[i], 255);
+		mask.setCalibration(ipOriPDs.getCalibration());
+		new FileSaver(mask).saveAsTiff(pathOutput+basename+"_PDsDetection.tif");
+	}
+	
 	/**
 	 * Saves the scaled Rois and the results (per cell and per tag) in the output folder, using the provided basename
 	 * @param pathOutput path to the output folder
@@ -189,7 +257,7 @@ public class WallsPDsAnalysis {
 		for(int i=0; i<rms.length; i++) {
 			String[] parameters=rts[i].getHeadings();
 			for(int j=0; j<parameters.length; j++) {
-				if(parameters[j]!="RoiName" && parameters[j]!="Structure") {
+				if(parameters[j]!="RoiName" && parameters[j]!="Structure" && !isSpatialMetricsColumn(parameters[j])) {
 					ImagePlus ip=createColorMap(ipOriWalls, parameters[j], rms[i], rts[i], lut);
 					IJ.run(ip, "Calibration Bar...", "location=[Upper Right] fill=None label=White number=5 decimal=0 font=12 zoom=12 overlay");
 					new FileSaver(ip).saveAsZip(pathOutput+basename+"_ColorMap"+type[i]+parameters[j]+".zip");
@@ -200,6 +268,19 @@ public class WallsPDsAnalysis {
 		
 	}
 	
+	/**
+	 * Checks whether a column of the results holds PDs spatial distribution metrics. Those are only saved in the
+	 * ResultsTables, color maps being too costly to render for each of them
+	 * @param heading the column's heading
+	 * @return true if the column holds a spatial distribution metric, false otherwise
+	 */
+	private boolean isSpatialMetricsColumn(String heading) {
+		for(String prefix:spatialMetricsColumns) {
+			if(heading.startsWith(prefix)) return true;
+		}
+		return false;
+	}
+	
 	/**
 	 * Adapts ROIs from the unscaledRoiWalls Roi Manager object made on image of size a to an image of size b (scaleFactor=b/a) and stored in the scaledRoiWalls object
 	 * @param scaleFactor scale ratio between the image where the ROIs where drawn and the image onto which they should be adapted
@@ -296,45 +377,230 @@ public class WallsPDsAnalysis {
 	 */
 	private ResultsTable quantify(Roi[] rois, String separator, int enlargeWalls, int enlargePDs) {
 		ResultsTable rt=new ResultsTable();
-		Calibration c=ipSegmentedPDs.getCalibration();
-		ipSegmentedPDs.setCalibration(new Calibration());
+		//Cells' area is measured on the segmented PDs image if provided, on the original one otherwise
+		ImagePlus ipRef=ipSegmentedPDs!=null?ipSegmentedPDs:ipOriPDs;
+		Calibration c=ipRef.getCalibration();
+		ipRef.setCalibration(new Calibration());
 		
 		int rowIndex=0;
+		Roi[] enlargedRois=new Roi[rois.length];
+		Polygon[] cellsPoints=new Polygon[rois.length];
 		
 		for(Roi r:rois) {
 			IJ.showStatus("Quantification: Processing ROI "+(rowIndex+1)+"/"+(rois.length));
 			
-			ipSegmentedPDs.setRoi(r);
-			ImageStatistics is=ipSegmentedPDs.getStatistics(ImageStatistics.AREA+ImageStatistics.MEAN);
+			ipRef.setRoi(r);
+			ImageStatistics is=ipRef.getStatistics(ImageStatistics.AREA+ImageStatistics.MEAN);
 			rt.setValue("RoiName", rowIndex, r.getName());
 			rt.setValue("Structure", rowIndex, r.getName().split(separator)[0]);
-			rt.setValue("Area_Cell_"+c.getUnit()+"2", rowIndex, is.area*(c.pixelWidth*c.pixelHeight));
+			double cellArea=is.area*(c.pixelWidth*c.pixelHeight);
+			rt.setValue("Area_Cell_"+c.getUnit()+"2", rowIndex, cellArea);
 			
 			Roi enlargeWallsRois=r!=null?RoiEnlarger.enlarge(r, enlargeWalls):r;
-			ipSegmentedPDs.setRoi(enlargeWallsRois);
-			int nPDs=(int) ((is.mean*is.longPixelCount)/255);
-			rt.setValue("Nb_PDs_(enlarge="+enlargeWalls+")", rowIndex, nPDs);
+			enlargedRois[rowIndex]=enlargeWallsRois;
+			cellsPoints[rowIndex]=getPDsPoints(enlargeWallsRois);
 			
-			MaximumFinder mf=new MaximumFinder();
-			mf.findMaxima(ipSegmentedPDs.getProcessor(), 0, MaximumFinder.POINT_SELECTION, false);
-			Roi pointRoi=ipSegmentedPDs.getRoi();
-			pointRoi=pointRoi!=null?RoiEnlarger.enlarge(pointRoi, enlargePDs):pointRoi;
-			
-			ipOriPDs.setRoi(pointRoi);
-			is=ipOriPDs.getStatistics(ImageStatistics.AREA+ImageStatistics.MEAN);
-			
-			rt.setValue("Area_PDs_"+c.getUnit()+"2_(enlarge="+enlargePDs+")", rowIndex, is.area*(c.pixelWidth*c.pixelHeight));
-			rt.setValue("Nb_PDs_per_Cell_Area_"+c.getUnit()+"2", rowIndex, nPDs/(is.area*(c.pixelWidth*c.pixelHeight)));
-			rt.setValue("Mean_Signal_PDs_perPixel_(enlarge="+enlargePDs+")", rowIndex++, is.mean);
+			if(ipSegmentedPDs!=null) {
+				//Segmented PDs image: measurements are kept as they have always been computed, for results to remain comparable
+				ipSegmentedPDs.setRoi(enlargeWallsRois);
+				int nPDs=(int) ((is.mean*is.longPixelCount)/255);
+				rt.setValue("Nb_PDs_(enlarge="+enlargeWalls+")", rowIndex, nPDs);
+				
+				MaximumFinder mf=new MaximumFinder();
+				mf.findMaxima(ipSegmentedPDs.getProcessor(), 0, MaximumFinder.POINT_SELECTION, false);
+				Roi pointRoi=ipSegmentedPDs.getRoi();
+				pointRoi=pointRoi!=null?RoiEnlarger.enlarge(pointRoi, enlargePDs):pointRoi;
+				
+				ipOriPDs.setRoi(pointRoi);
+				is=ipOriPDs.getStatistics(ImageStatistics.AREA+ImageStatistics.MEAN);
+				
+				rt.setValue("Area_PDs_"+c.getUnit()+"2_(enlarge="+enlargePDs+")", rowIndex, is.area*(c.pixelWidth*c.pixelHeight));
+				rt.setValue("Nb_PDs_per_Cell_Area_"+c.getUnit()+"2", rowIndex, nPDs/(is.area*(c.pixelWidth*c.pixelHeight)));
+				rt.setValue("Mean_Signal_PDs_perPixel_(enlarge="+enlargePDs+")", rowIndex++, is.mean);
+			}else {
+				//PDs detected in-process: measurements are derived from the detection points
+				int nPDs=cellsPoints[rowIndex].npoints;
+				rt.setValue("Nb_PDs_(enlarge="+enlargeWalls+")", rowIndex, nPDs);
+				
+				double[] PDsSignal=measurePDs(cellsPoints[rowIndex], enlargePDs);
+				
+				rt.setValue("Area_PDs_"+c.getUnit()+"2_(enlarge="+enlargePDs+")", rowIndex, PDsSignal[0]*(c.pixelWidth*c.pixelHeight));
+				rt.setValue("Nb_PDs_per_Cell_Area_"+c.getUnit()+"2", rowIndex, nPDs/cellArea);
+				rt.setValue("Mean_Signal_PDs_perPixel_(enlarge="+enlargePDs+")", rowIndex++, PDsSignal[1]);
+			}
 		}
 		
-		ipSegmentedPDs.setCalibration(c);
-		ipSegmentedPDs.resetRoi();
+		ipRef.setCalibration(c);
+		ipRef.resetRoi();
 		ipOriPDs.resetRoi();
 		
+		if(spatialMetrics) addSpatialMetrics(rt, rois, enlargedRois, cellsPoints, c, enlargeWalls);
+		
 		return rt;
 	}
 	
+	/**
+	 * Extracts the coordinates of all PDs from the segmented PDs image (a mask where PDs appear as single points)
+	 * @param ip the segmented PDs image
+	 * @return a Polygon containing one vertex per PD
+	 */
+	private Polygon getPDsPoints(ImagePlus ip) {
+		ImageProcessor iproc=ip.getProcessor();
+		Polygon points=new Polygon();
+		for(int y=0; y<iproc.getHeight(); y++) {
+			for(int x=0; x<iproc.getWidth(); x++) {
+				if(iproc.get(x, y)!=0) points.addPoint(x, y);
+			}
+		}
+		return points;
+	}
+	
+	/**
+	 * Retrieves the PDs lying within a Roi, using the PDs spatial index: candidates are taken from the bounding box, then filtered by the Roi itself
+	 * @param r the Roi to look into
+	 * @return a Polygon containing one vertex per PD
+	 */
+	private Polygon getPDsPoints(Roi r) {
+		Polygon points=new Polygon();
+		if(r==null) return points;
+		
+		for(int i:PDsIndex.getPointsIn(r.getBounds())) {
+			if(r.contains(PDsIndex.x[i], PDsIndex.y[i])) points.addPoint(PDsIndex.x[i], PDsIndex.y[i]);
+		}
+		return points;
+	}
+	
+	/**
+	 * Measures the PDs' signal on the original PDs image, over the union of disks centred on each PD
+	 * @param points the PDs to measure
+	 * @param enlargePDs radius of the disks (in pixels), 0 to only measure the detection point
+	 * @return an array containing the number of measured pixels and their mean intensity (NaN if no pixel was measured)
+	 */
+	private double[] measurePDs(Polygon points, int enlargePDs) {
+		if(points.npoints==0) return new double[] {0, Double.NaN};
+		
+		ImageProcessor iproc=ipOriPDs.getProcessor();
+		Rectangle bounds=points.getBounds();
+		bounds.grow(enlargePDs, enlargePDs);
+		bounds=bounds.intersection(new Rectangle(0, 0, iproc.getWidth(), iproc.getHeight()));
+		
+		//Pixels covered by several disks should only be counted once
+		boolean[] isMeasured=new boolean[bounds.width*bounds.height];
+		int count=0;
+		double sum=0;
+		for(int i=0; i<points.npoints; i++) {
+			for(int y=Math.max(bounds.y, points.ypoints[i]-enlargePDs); y<=Math.min(bounds.y+bounds.height-1, points.ypoints[i]+enlargePDs); y++) {
+				for(int x=Math.max(bounds.x, points.xpoints[i]-enlargePDs); x<=Math.min(bounds.x+bounds.width-1, points.xpoints[i]+enlargePDs); x++) {
+					int dx=x-points.xpoints[i];
+					int dy=y-points.ypoints[i];
+					int index=(x-bounds.x)+(y-bounds.y)*bounds.width;
+					if(dx*dx+dy*dy<=enlargePDs*enlargePDs && !isMeasured[index]) {
+						isMeasured[index]=true;
+						sum+=iproc.getPixelValue(x, y);
+						count++;
+					}
+				}
+			}
+		}
+		
+		return new double[] {count, count>0?sum/count:Double.NaN};
+	}
+	
+	/**
+	 * Adds the PDs spatial distribution metrics to the input ResultsTable. As Rois are independent, cells are processed in parallel.
+	 * Distances are expressed in calibrated units, unless pixels are not square, in which case they are kept in pixels.
+	 * Ripley's L is always expressed in pixels, so that columns are the same whatever the pixel size
+	 * @param rt the ResultsTable to feed, one line per Roi
+	 * @param rois array of ROIs containing cells' delineations
+	 * @param enlargedRois array of ROIs containing cells' delineations, enlarged to include all PDs
+	 * @param cellsPoints array of PDs found within each enlarged ROI
+	 * @param c calibration of the PDs image
+	 * @param enlargeWalls enlargement (in pixels) that was performed on the cells' delineations
+	 */
+	private void addSpatialMetrics(ResultsTable rt, Roi[] rois, Roi[] enlargedRois, Polygon[] cellsPoints, Calibration c, int enlargeWalls) {
+		IJ.showStatus("Spatial metrics: Processing "+rois.length+" ROIs");
+		double[][] metrics=new double[rois.length][];
+		IntStream.range(0, rois.length).parallel().forEach(i->metrics[i]=getSpatialMetrics(rois[i], enlargedRois[i], cellsPoints[i]));
+		
+		//Distances are computed in pixels: they can only be converted to calibrated units with square pixels
+		boolean isSquare=c.pixelWidth==c.pixelHeight;
+		double scale=isSquare?c.pixelWidth:1;
+		String unit=isSquare?c.getUnit():"pixel";
+		
+		for(int i=0; i<rois.length; i++) {
+			rt.setValue("Mean_NN_Distance_PDs_"+unit+"_(enlarge="+enlargeWalls+")", i, metrics[i][0]*scale);
+			rt.setValue("Mean_Distance_PDs_to_Boundary_"+unit+"_(enlarge="+enlargeWalls+")", i, metrics[i][1]*scale);
+			for(int j=0; j<ripleyRadii.length; j++) {
+				rt.setValue("Ripley_L_PDs_pixel_(r="+ripleyRadii[j]+"pixel)", i, metrics[i][j+2]);
+			}
+		}
+	}
+	
+	/**
+	 * Computes the PDs spatial distribution metrics for a single cell.
+	 * Ripley's L is computed without edge correction, using the enlarged Roi's area as the observation window.
+	 * @param r the Roi containing the cell's delineation
+	 * @param enlargedRoi the Roi containing the cell's delineation, enlarged to include all PDs
+	 * @param cellPoints the PDs found within the enlarged Roi
+	 * @return an array containing, in pixels, the mean nearest neighbour distance, the mean distance to the cell's boundary
+	 * and Ripley's L for each of the ripleyRadii. Values are NaN when not enough PDs are found
+	 */
+	private double[] getSpatialMetrics(Roi r, Roi enlargedRoi, Polygon cellPoints) {
+		double[] out=new double[ripleyRadii.length+2];
+		Arrays.fill(out, Double.NaN);
+		int n=cellPoints.npoints;
+		if(r==null || enlargedRoi==null || n==0) return out;
+		
+		Rectangle bounds=enlargedRoi.getBounds();
+		
+		//Distance to boundary: inside and outside distance maps of the cell, computed over the enlarged bounding box
+		ByteProcessor mask=new ByteProcessor(bounds.width, bounds.height);
+		Roi shifted=(Roi) r.clone();
+		shifted.setLocation(r.getBounds().x-bounds.x, r.getBounds().y-bounds.y);
+		mask.setValue(255);
+		mask.fill(shifted);
+		FloatProcessor edmIn=new EDM().makeFloatEDM(mask, 0, true);
+		mask.invert();
+		FloatProcessor edmOut=new EDM().makeFloatEDM(mask, 0, false);
+		
+		double sumBoundary=0;
+		for(int i=0; i<n; i++) {
+			int x=cellPoints.xpoints[i]-bounds.x;
+			int y=cellPoints.ypoints[i]-bounds.y;
+			float d=edmIn.getf(x, y);
+			sumBoundary+=d>0?d:edmOut.getf(x, y);
+		}
+		out[1]=sumBoundary/n;
+		
+		if(n<2) return out;
+		
+		//Observation window's area, taken from the Roi's own mask (null for rectangles)
+		ImageProcessor windowMask=enlargedRoi.getMask();
+		double area=bounds.width*bounds.height;
+		if(windowMask!=null) {
+			area=0;
+			for(byte b:(byte[]) windowMask.getPixels()) if(b!=0) area++;
+		}
+		
+		//Local index, bins being sized so that each one holds about one PD
+		PDsSpatialIndex cellIndex=new PDsSpatialIndex(cellPoints, Math.sqrt(area/n));
+		
+		double sumNN=0;
+		long[] pairs=new long[ripleyRadii.length];
+		for(int i=0; i<n; i++) {
+			sumNN+=cellIndex.getNearestNeighbourDistance(i);
+			for(int j=0; j<ripleyRadii.length; j++) pairs[j]+=cellIndex.countNeighboursWithin(i, ripleyRadii[j]);
+		}
+		out[0]=sumNN/n;
+		
+		for(int j=0; j<ripleyRadii.length; j++) {
+			double k=area*pairs[j]/((double) n*(n-1));
+			out[j+2]=Math.sqrt(k/Math.PI);
+		}
+		
+		return out;
+	}
+	
 	/**
 	 * Creates a colorMap from extracted data
 	 * @param ip an example image, from which dimensions are extracted to generate teh map